@@ -0,0 +1,135 @@
+package mygit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Streams a commit's files from the object store as a tar or zip archive.
+// Each file is copied straight from its blob through a fixed buffer, so memory use does not depend on commit size.
+class Archive {
+    static final String TAR = "tar";
+    static final String ZIP = "zip";
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    // largest size that fits in the 11 octal digits of a ustar header
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+
+    static boolean isFormat(String format) {
+        return TAR.equals(format) || ZIP.equals(format);
+    }
+
+    static void write(Commit c, String format, OutputStream out) throws IOException {
+        if (ZIP.equals(format)) {
+            writeZip(c, out);
+        } else {
+            writeTar(c, out);
+        }
+        out.flush();
+    }
+
+    private static void writeZip(Commit c, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        for (Map.Entry<String, ObjectId> entry : c.getTrackedFiles().entrySet()) {
+            ZipEntry zipEntry = new ZipEntry(entry.getKey());
+            zipEntry.setTime(c.getTimestamp());
+            zip.putNextEntry(zipEntry);
+            Files.copy(blobFor(entry).toPath(), zip);
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    private static void writeTar(Commit c, OutputStream out) throws IOException {
+        long mtime = c.getTimestamp() / 1000;
+        for (Map.Entry<String, ObjectId> entry : c.getTrackedFiles().entrySet()) {
+            File blob = blobFor(entry);
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            long size = blob.length();
+
+            // names and sizes that do not fit the ustar header go in a pax extended header first
+            StringBuilder pax = new StringBuilder();
+            if (name.length > NAME_LENGTH) {
+                pax.append(paxRecord("path", entry.getKey()));
+            }
+            if (size > MAX_USTAR_SIZE) {
+                pax.append(paxRecord("size", Long.toString(size)));
+            }
+            if (pax.length() > 0) {
+                byte[] records = pax.toString().getBytes(StandardCharsets.UTF_8);
+                out.write(tarHeader("PaxHeader".getBytes(StandardCharsets.UTF_8), records.length, mtime, (byte) 'x'));
+                out.write(records);
+                pad(out, records.length);
+            }
+
+            out.write(tarHeader(name, Math.min(size, MAX_USTAR_SIZE), mtime, (byte) '0'));
+            Files.copy(blob.toPath(), out);
+            pad(out, size);
+        }
+        out.write(new byte[2 * BLOCK_SIZE]);
+    }
+
+    private static File blobFor(Map.Entry<String, ObjectId> entry) throws IOException {
+        File blob = Repository.getBlobFile(entry.getValue(), entry.getKey());
+        if (!blob.isFile()) {
+            throw new IOException("Missing object " + entry.getValue() + " for " + entry.getKey());
+        }
+        return blob;
+    }
+
+    private static byte[] tarHeader(byte[] name, long size, long mtime, byte type) {
+        byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy(name, 0, header, 0, Math.min(name.length, NAME_LENGTH));
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, mtime);
+        header[156] = type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        System.arraycopy("00".getBytes(StandardCharsets.US_ASCII), 0, header, 263, 2);
+
+        // checksum is computed with its own field set to spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        octal(header, 148, 7, sum);
+        return header;
+    }
+
+    // zero-padded octal in LEN - 1 digits followed by a NUL
+    private static void octal(byte[] header, int offset, int len, long value) {
+        String digits = Long.toOctalString(value);
+        int pad = len - 1 - digits.length();
+        for (int i = 0; i < len - 1; i++) {
+            header[offset + i] = (byte) (i < pad ? '0' : digits.charAt(i - pad));
+        }
+        header[offset + len - 1] = 0;
+    }
+
+    // "<length> <key>=<value>\n", where length counts the whole record including its own digits
+    private static String paxRecord(String key, String value) {
+        int base = key.length() + value.getBytes(StandardCharsets.UTF_8).length + 3;
+        int len = base + Integer.toString(base).length();
+        if (Integer.toString(len).length() > Integer.toString(base).length()) {
+            len++;
+        }
+        return len + " " + key + "=" + value + "\n";
+    }
+
+    private static void pad(OutputStream out, long written) throws IOException {
+        int remainder = (int) (written % BLOCK_SIZE);
+        if (remainder != 0) {
+            out.write(new byte[BLOCK_SIZE - remainder]);
+        }
+    }
+}
@@ -1,16 +1,25 @@
 package mygit;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -18,41 +27,56 @@ import java.util.stream.Stream;
 import static mygit.Utils.*;
 
 class Commit implements Serializable {
-    private static final int COMMIT_NAME_LENGTH = UID_LENGTH - 2;
+    // fixed so that adding methods does not make stored commits unreadable
+    private static final long serialVersionUID = 1L;
+    private static final int COMMIT_NAME_LENGTH = ObjectId.HEX_LENGTH - 2;
     private final String message;
     private static final String PATTERN = "EEE MMM dd HH:mm:ss yyyy Z";
     private static final SimpleDateFormat SIMPLE_DATE_FORMAT = new SimpleDateFormat(PATTERN);
+    private static final int ONELINE_ID_LENGTH = 7;
     private final String time;
     private final long timeForComparison;
-    private final String parent1;
-    private HashSet<String> files = new HashSet<>();
-    private String sha;
+    private final ObjectId parent1;
+    // file name -> blob id; sorted so the serialized form, and hence the commit ID, is reproducible
+    private TreeMap<String, ObjectId> files = new TreeMap<>();
+    // not serialized: the ID is the hash of the stored bytes, so it is restored from the object's name on load
+    private transient ObjectId sha;
 
-    private Commit(String msg, Date date, String parent1) {
+    private Commit(String msg, Date date, ObjectId parent1) {
         this.message = msg;
         this.time = SIMPLE_DATE_FORMAT.format(date);
         this.timeForComparison = date.getTime();
         this.parent1 = parent1;
     }
 
-    private static Commit getCommit(String msg, String parent) {
+    private static Commit getCommit(String msg, ObjectId parent) {
         return new Commit(msg, new Date(), parent);
     }
 
-    String getID() {
+    ObjectId getID() {
         return sha;
     }
 
+    // commit time in milliseconds since the epoch
+    long getTimestamp() {
+        return timeForComparison;
+    }
+
+    ObjectId getParentID() {
+        return parent1;
+    }
+
+    // file name -> blob id for every tracked file
+    Map<String, ObjectId> getTrackedFiles() {
+        return Collections.unmodifiableMap(files);
+    }
+
     String getMessage() {
         return message;
     }
 
-    HashSet<String> getCommittedFiles() {
-        HashSet<String> returnList = new HashSet<>();
-        for (String file : files) {
-            returnList.add(file.substring(UID_LENGTH));
-        }
-        return returnList;
+    Set<String> getCommittedFiles() {
+        return Collections.unmodifiableSet(files.keySet());
     }
 
     static Boolean isCommit(String fileName) {
@@ -60,79 +84,98 @@ class Commit implements Serializable {
     }
 
     Boolean containsFileName(String fileName) {
-        return getCommittedFiles().contains(fileName);
+        return files.containsKey(fileName);
     }
 
     Boolean containsExactFile(File file) {
-        String fileName = getFileID(file) + file.getName();
-        return files.contains(fileName);
+        return getFileID(file).equals(files.get(file.getName()));
     }
 
+    // blob id of a tracked file, or null if the file is not tracked
+    ObjectId getBlobID(String fileName) {
+        return files.get(fileName);
+    }
 
-    String getFullFileName(String fileName) {
-        for (String fullFileName : files) {
-            if (fullFileName.substring(UID_LENGTH).equals(fileName)) {
-                return fullFileName;
-            }
+    // Finds a commit by a full or abbreviated ID
+    static Commit getCommitFromString(String commit) {
+        Commit c = findCommit(commit);
+        if (c == null) {
+            System.out.println("No commit with that id exists.");
+            System.exit(0);
         }
-        return null;
+        return c;
     }
 
-    // Finds a commit by ID
-    static Commit getCommitFromString(String commit) {
-        if (commit.length() > 2) {
+    // Like getCommitFromString, but returns null instead of exiting when there is no such commit
+    static Commit findCommit(String commit) {
+        if (commit.length() == ObjectId.HEX_LENGTH && ObjectId.isHex(commit)) {
+            ObjectId id = ObjectId.fromHex(commit);
+            File file = Repository.getObjectFile(id);
+            return file.isFile() ? read(file, id) : null;
+        }
+        if (commit.length() > 2 && commit.length() < ObjectId.HEX_LENGTH && ObjectId.isHex(commit)) {
             String dirString = commit.substring(0, 2);
             File dir = join(Repository.OBJECTS_DIR, dirString);
             List<String> dirFiles = plainFilenamesIn(dir);
             if (dirFiles != null) {
                 String commitStr = commit.substring(2);
                 for (String file : dirFiles) {
-                    String fileSubstring = file.substring(0, commitStr.length());
-                    if (Commit.isCommit(file) && fileSubstring.equals(commitStr)) {
-                        return readObject(join(dir, file), Commit.class);
+                    if (Commit.isCommit(file) && file.startsWith(commitStr)) {
+                        return read(join(dir, file), ObjectId.fromHex(dirString + file));
                     }
                 }
             }
         }
-        System.out.println("No commit with that id exists.");
-        System.exit(0);
         return null;
     }
 
+    // Loads a commit by its exact ID without scanning the objects directory
+    static Commit load(ObjectId id) {
+        File file = Repository.getObjectFile(id);
+        if (!file.isFile()) {
+            System.out.println("No commit with that id exists.");
+            System.exit(0);
+        }
+        return read(file, id);
+    }
+
+    // reads the commit stored in FILE under the given ID
+    static Commit read(File file, ObjectId id) {
+        Commit c = readObject(file, Commit.class);
+        c.sha = id;
+        return c;
+    }
+
     // generates SHA1 id for a file based on its contents
-    static String getFileID(File file) {
-        String s = readContentsAsString(file);
-        return sha1(serialize(s));
+    static ObjectId getFileID(File file) {
+        return sha1OfFile(file);
     }
 
     // creates initial commit with timestamp 0
-    static String firstCommit() {
+    static ObjectId firstCommit() {
         Commit c = new Commit("initial commit", new Date(0), null);
         c.saveCommitment();
         return c.getID();
     }
 
     private void saveCommitment() {
-        sha = sha1(serialize(this));
-        File file = join(Repository.OBJECTS_DIR, sha.substring(0, 2), sha.substring(2));
-        writeObject(file, this);
+        byte[] contents = serialize(this);
+        sha = sha1(contents);
+        writeContents(Repository.getObjectFile(sha), contents);
     }
 
-    static String makeCommitment(String msg) {
+    static ObjectId makeCommitment(String msg) {
         Commit parent = Main.repo.getLatestCommit();
         Commit child = getCommit(msg, parent.getID());
-        child.files = new HashSet<>(parent.files);
+        child.files = new TreeMap<>(parent.files);
         return makeCommitmentHelper(child);
     }
 
     // Helper for creating new commits
-    private static String makeCommitmentHelper(Commit c) {
+    private static ObjectId makeCommitmentHelper(Commit c) {
         List<String> filesInStagingDir = plainFilenamesIn(Repository.STAGING_DIR);
         if (filesInStagingDir != null) {
             for (String file : plainFilenamesIn(Repository.STAGING_DIR)) {
-                if (c.containsFileName(file)) {
-                    c.removeFileFromCommit(file);
-                }
                 c.addFileToCommit(file);
             }
         }
@@ -146,15 +189,13 @@ class Commit implements Serializable {
     // staging area -> commit
     private void addFileToCommit(String fileString) {
         File file = join(Repository.STAGING_DIR, fileString);
-        String fullFileName = getFileID(file) + fileString;
-        files.add(fullFileName);
-        saveFileForCommit(file.toPath(), fullFileName);
+        ObjectId id = getFileID(file);
+        files.put(fileString, id);
+        saveFileForCommit(file.toPath(), Repository.getBlobFile(id, fileString).toPath());
     }
 
     // staged file -> objects directory
-    private static void saveFileForCommit(Path file, String fileName) {
-        Path destination = join(Repository.OBJECTS_DIR,
-                fileName.substring(0, 2), fileName.substring(2)).toPath();
+    private static void saveFileForCommit(Path file, Path destination) {
         try {
             Files.move(file, destination, StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
@@ -164,12 +205,7 @@ class Commit implements Serializable {
 
     // Removes file from tracked files
     private void removeFileFromCommit(String fileToRemove) {
-        for (String file : files) {
-            if (file.substring(UID_LENGTH).equals(fileToRemove)) {
-                files.remove(file);
-                return;
-            }
-        }
+        files.remove(fileToRemove);
     }
 
     @Override
@@ -179,15 +215,88 @@ class Commit implements Serializable {
         return str.toString();
     }
 
-    void log() {
-        System.out.println(this);
-        Commit c = this;
-        while (c.parent1 != null) {
-            c = getCommitFromString(c.parent1);
-            System.out.println(c);
+    String toOneLine() {
+        return sha.name().substring(0, ONELINE_ID_LENGTH) + " " + message;
+    }
+
+    // Prints this commit and its ancestors, newest first, loading only the commits that are reached.
+    // Commits newer than UNTIL are skipped; the walk stops after LIMIT commits or at the first one older than SINCE.
+    void log(int limit, long since, long until, boolean oneline) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), BUFFER_SIZE));
+        int printed = 0;
+        Iterator<Commit> history = ancestry();
+        while (printed < limit && history.hasNext()) {
+            Commit c;
+            try {
+                c = history.next();
+            } catch (MygitException e) {
+                // keep what was already printed before reporting the broken history
+                out.flush();
+                System.out.println(e.getMessage());
+                return;
+            }
+            if (c.timeForComparison < since) {
+                break;
+            }
+            if (c.timeForComparison > until) {
+                continue;
+            }
+            out.println(oneline ? c.toOneLine() : c);
+            printed++;
         }
+        out.flush();
+    }
+
+    // Iterates over this commit and its parent1 chain; each parent is read from disk only when next() reaches it.
+    // A missing parent throws MygitException rather than exiting, so callers can flush their output first.
+    Iterator<Commit> ancestry() {
+        return new Iterator<Commit>() {
+            private Commit first = Commit.this;
+            private ObjectId nextID = null;
+
+            @Override
+            public boolean hasNext() {
+                return first != null || nextID != null;
+            }
+
+            @Override
+            public Commit next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Commit c = first;
+                if (c == null) {
+                    File file = Repository.getObjectFile(nextID);
+                    if (!file.isFile()) {
+                        throw error("No commit with that id exists.");
+                    }
+                    c = read(file, nextID);
+                }
+                first = null;
+                nextID = c.parent1;
+                return c;
+            }
+        };
+    }
+
+    // parses a --since/--until date as yyyy-MM-dd or yyyy-MM-dd HH:mm:ss, in local time
+    static long parseTime(String date) {
+        for (String pattern : new String[]{"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd"}) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern);
+            format.setLenient(false);
+            // parse(String) ignores trailing text, so require the whole argument to be consumed
+            ParsePosition position = new ParsePosition(0);
+            Date parsed = format.parse(date, position);
+            if (parsed != null && position.getIndex() == date.length()) {
+                return parsed.getTime();
+            }
+        }
+        System.out.println("Invalid date: " + date);
+        System.exit(0);
+        return 0;
     }
 
+    // all commits in the log file, newest first (the file itself is appended to, so oldest first)
     static ArrayList<Commit> getAllCommits() {
         ArrayList<Commit> returnFiles = new ArrayList<>();
         Pattern pattern = Pattern.compile("commit (.+)");
@@ -198,6 +307,7 @@ class Commit implements Serializable {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        Collections.reverse(returnFiles);
         return returnFiles;
     }
 
@@ -211,6 +321,6 @@ class Commit implements Serializable {
 
     @Override
     public int hashCode() {
-        return Integer.parseInt(sha.substring(0, 6), 16);
+        return sha.hashCode();
     }
 }
\ No newline at end of file
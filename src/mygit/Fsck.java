@@ -0,0 +1,164 @@
+package mygit;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static mygit.Utils.*;
+
+// Integrity check: rehashes every object in parallel, then walks the history from HEAD
+// to report corrupt, missing and dangling objects. Commits and blobs alike are named by the
+// SHA-1 of their stored bytes, so both are verified by streaming the file through the hash.
+class Fsck {
+    private static final int NAME_LENGTH = ObjectId.HEX_LENGTH - 2;
+
+    // a file under objects/xx/; fileName is null for commits
+    private static class StoredObject {
+        final File file;
+        final ObjectId id;
+        final String fileName;
+
+        StoredObject(File file, ObjectId id, String fileName) {
+            this.file = file;
+            this.id = id;
+            this.fileName = fileName;
+        }
+
+        boolean isCommit() {
+            return fileName == null;
+        }
+
+        @Override
+        public String toString() {
+            return isCommit() ? "commit " + id : "blob " + id + " (" + fileName + ")";
+        }
+    }
+
+    private final ObjectId head;
+    // commits that passed verification, so the history walk does not read them twice
+    private final Map<ObjectId, Commit> verifiedCommits = new ConcurrentHashMap<>();
+
+    Fsck(ObjectId head) {
+        this.head = head;
+    }
+
+    // Returns false if any corrupt, missing or unknown object was reported.
+    boolean run(boolean prune) {
+        List<String> unknown = new ArrayList<>();
+        List<StoredObject> objects = listObjects(unknown);
+
+        Set<File> corrupt = objects.parallelStream()
+                .filter(o -> !verify(o))
+                .map(o -> o.file)
+                .collect(Collectors.toSet());
+
+        Set<File> reachable = new HashSet<>();
+        Set<String> missing = new TreeSet<>();
+        boolean complete = walkFromHead(corrupt, reachable, missing);
+
+        unknown.forEach(name -> System.out.println("unknown object file " + name));
+        objects.stream().filter(o -> corrupt.contains(o.file))
+                .forEach(o -> System.out.println("corrupt " + o));
+        missing.forEach(System.out::println);
+
+        // with a broken history, objects past the break may still be reachable, so they are
+        // reported as unverified rather than dangling, and nothing is pruned
+        int pruned = 0;
+        for (StoredObject o : objects) {
+            if (reachable.contains(o.file)) {
+                continue;
+            }
+            if (!complete) {
+                System.out.println("unverified " + o);
+            } else {
+                System.out.println("dangling " + o);
+                if (prune && o.file.delete()) {
+                    pruned++;
+                }
+            }
+        }
+        System.out.println("Checked " + objects.size() + " objects.");
+        if (prune && complete) {
+            System.out.println("Pruned " + pruned + " objects.");
+        } else if (prune) {
+            System.out.println("Not pruning: history from HEAD is incomplete.");
+        }
+        return unknown.isEmpty() && corrupt.isEmpty() && missing.isEmpty();
+    }
+
+    // Lists every object file in sorted order; names that are not valid object names go to UNKNOWN.
+    private static List<StoredObject> listObjects(List<String> unknown) {
+        List<StoredObject> objects = new ArrayList<>();
+        for (String c1 : Repository.HEXADECIMAL_CHARS) {
+            for (String c2 : Repository.HEXADECIMAL_CHARS) {
+                String dirName = c1 + c2;
+                List<String> files = plainFilenamesIn(join(Repository.OBJECTS_DIR, dirName));
+                if (files == null) {
+                    continue;
+                }
+                for (String name : files) {
+                    String hex = name.length() >= NAME_LENGTH ? dirName + name.substring(0, NAME_LENGTH) : "";
+                    if (!hex.isEmpty() && ObjectId.isHex(hex)) {
+                        String fileName = name.length() == NAME_LENGTH ? null : name.substring(NAME_LENGTH);
+                        objects.add(new StoredObject(join(Repository.OBJECTS_DIR, dirName, name),
+                                ObjectId.fromHex(hex), fileName));
+                    } else {
+                        unknown.add(dirName + "/" + name);
+                    }
+                }
+            }
+        }
+        return objects;
+    }
+
+    // true if the object's contents still hash to its ID
+    private boolean verify(StoredObject o) {
+        try {
+            if (!o.id.equals(sha1OfFile(o.file))) {
+                return false;
+            }
+            if (o.isCommit()) {
+                verifiedCommits.put(o.id, Commit.read(o.file, o.id));
+            }
+            return true;
+        } catch (RuntimeException excp) {
+            // an unreadable object must not abort the check of every other object
+            return false;
+        }
+    }
+
+    // Follows parent1 from HEAD, collecting every reachable object file and reporting the missing ones.
+    // Returns false if a missing or corrupt commit cut the walk short; missing blobs do not stop the walk.
+    private boolean walkFromHead(Set<File> corrupt, Set<File> reachable, Set<String> missing) {
+        ObjectId id = head;
+        while (id != null) {
+            File file = Repository.getObjectFile(id);
+            if (!file.isFile()) {
+                missing.add("missing commit " + id);
+                return false;
+            }
+            reachable.add(file);
+            Commit c = verifiedCommits.get(id);
+            if (c == null || corrupt.contains(file)) {
+                // a corrupt commit cannot be trusted to name its files or parent
+                return false;
+            }
+            for (Map.Entry<String, ObjectId> entry : c.getTrackedFiles().entrySet()) {
+                File blob = Repository.getBlobFile(entry.getValue(), entry.getKey());
+                if (blob.isFile()) {
+                    reachable.add(blob);
+                } else {
+                    missing.add("missing blob " + entry.getValue() + " (" + entry.getKey() + ")");
+                }
+            }
+            id = c.getParentID();
+        }
+        return true;
+    }
+}
@@ -1,14 +1,96 @@
 package mygit;
 
+import java.util.Arrays;
+
 public class Main {
+    private static void incorrectOperands() {
+        System.out.println("Incorrect operands.");
+        System.exit(0);
+    }
+
     // ensure the number of arguments are correct
     private static void paramLenCheck(String[] args, int n) {
         if (args.length != n) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            incorrectOperands();
         }
     }
 
+    // ensure there are at least n arguments
+    private static void paramMinCheck(String[] args, int n) {
+        if (args.length < n) {
+            incorrectOperands();
+        }
+    }
+
+    // arguments after the command name
+    private static String[] operands(String[] args) {
+        return Arrays.copyOfRange(args, 1, args.length);
+    }
+
+    // archive <commit> [--format tar|zip] [-o <file>]
+    private static void archive(String[] args) {
+        paramMinCheck(args, 2);
+        String format = null;
+        String output = null;
+        if (args.length % 2 != 0) {
+            incorrectOperands();
+        }
+        for (int i = 2; i < args.length; i += 2) {
+            if (args[i].equals("--format")) {
+                format = args[i + 1];
+            } else if (args[i].equals("-o")) {
+                output = args[i + 1];
+            } else {
+                incorrectOperands();
+            }
+        }
+        if (format == null) {
+            format = output != null && output.endsWith(".zip") ? Archive.ZIP : Archive.TAR;
+        }
+        Repository.archive(args[1], format, output);
+    }
+
+    private static int parseCount(String count) {
+        try {
+            int n = Integer.parseInt(count);
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        System.out.println("Count must be a positive number.");
+        System.exit(0);
+        return 0;
+    }
+
+    // log [-n <count> | -n<count> | -<count>] [--since <date>] [--until <date>] [--oneline]
+    private static void log(String[] args) {
+        int limit = Integer.MAX_VALUE;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        boolean oneline = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--oneline")) {
+                oneline = true;
+            } else if (args[i].matches("-n?[0-9]+")) {
+                // attached forms, as in git: -n5 and -5
+                limit = parseCount(args[i].substring(args[i].startsWith("-n") ? 2 : 1));
+            } else if (i + 1 >= args.length) {
+                incorrectOperands();
+            } else if (args[i].equals("-n")) {
+                limit = parseCount(args[++i]);
+            } else if (args[i].equals("--since")) {
+                since = Commit.parseTime(args[++i]);
+            } else if (args[i].equals("--until")) {
+                until = Commit.parseTime(args[++i]);
+            } else {
+                incorrectOperands();
+            }
+        }
+        repo.log(limit, since, until, oneline);
+    }
+
     static Repository repo = null;
 
     public static void main(String[] args) {
@@ -29,8 +111,8 @@ public class Main {
             repo = Repository.loadHead();
             switch (firstArg) {
                 case "add":
-                    paramLenCheck(args, 2);
-                    repo.add(args[1]);
+                    paramMinCheck(args, 2);
+                    repo.add(operands(args));
                     break;
                 case "commit":
                     paramLenCheck(args, 2);
@@ -41,16 +123,23 @@ public class Main {
                     repo.rm(args[1]);
                     break;
                 case "log":
-                    paramLenCheck(args, 1);
-                    repo.log();
+                    log(args);
                     break;
                 case "find":
                     paramLenCheck(args, 2);
                     Repository.find(args[1]);
                     break;
                 case "status":
-                    paramLenCheck(args, 1);
-                    repo.status();
+                    repo.status(operands(args));
+                    break;
+                case "fsck":
+                    if (args.length > 2 || (args.length == 2 && !args[1].equals("--prune"))) {
+                        incorrectOperands();
+                    }
+                    repo.fsck(args.length == 2);
+                    break;
+                case "archive":
+                    archive(args);
                     break;
                 default:
                     System.out.println("No command with that name exists. ");
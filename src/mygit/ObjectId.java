@@ -0,0 +1,144 @@
+package mygit;
+
+import java.io.Serializable;
+
+// Immutable SHA-1 object id held as 20 raw bytes (two longs and an int) instead of a 40-char hex String.
+final class ObjectId implements Serializable, Comparable<ObjectId> {
+    // fixed so that adding methods does not make stored commits and .mygit/repo unreadable
+    private static final long serialVersionUID = 1L;
+    static final int RAW_LENGTH = 20;
+    static final int HEX_LENGTH = 2 * RAW_LENGTH;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final long w1;
+    private final long w2;
+    private final int w3;
+
+    private ObjectId(long w1, long w2, int w3) {
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    // builds an id from a raw 20-byte digest
+    static ObjectId fromRaw(byte[] raw) {
+        if (raw.length != RAW_LENGTH) {
+            throw new IllegalArgumentException("object id must be " + RAW_LENGTH + " bytes");
+        }
+        return new ObjectId(readLong(raw, 0), readLong(raw, 8), (int) readBits(raw, 16, 4));
+    }
+
+    // parses a full 40-char lowercase or uppercase hex id
+    static ObjectId fromHex(String hex) {
+        if (hex.length() != HEX_LENGTH) {
+            throw new IllegalArgumentException("object id must be " + HEX_LENGTH + " hex chars");
+        }
+        return new ObjectId(parseHex(hex, 0, 16), parseHex(hex, 16, 16), (int) parseHex(hex, 32, 8));
+    }
+
+    static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.digit(s.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    byte[] toRaw() {
+        byte[] raw = new byte[RAW_LENGTH];
+        writeBits(raw, 0, w1, 8);
+        writeBits(raw, 8, w2, 8);
+        writeBits(raw, 16, w3, 4);
+        return raw;
+    }
+
+    // full 40-char lowercase hex form
+    String name() {
+        return new String(hexChars());
+    }
+
+    // first two hex chars, used as the objects/ fan-out directory; taken straight from the top byte
+    String dirName() {
+        return new String(new char[]{HEX_DIGITS[(int) (w1 >>> 60)], HEX_DIGITS[(int) (w1 >>> 56) & 0xf]});
+    }
+
+    // remaining 38 hex chars, used as the file name inside the fan-out directory
+    String fileName() {
+        return new String(hexChars(), 2, HEX_LENGTH - 2);
+    }
+
+    private char[] hexChars() {
+        char[] out = new char[HEX_LENGTH];
+        formatHex(out, 0, w1, 16);
+        formatHex(out, 16, w2, 16);
+        formatHex(out, 32, w3, 8);
+        return out;
+    }
+
+    @Override
+    public int compareTo(ObjectId o) {
+        int cmp = Long.compareUnsigned(w1, o.w1);
+        if (cmp != 0) return cmp;
+        cmp = Long.compareUnsigned(w2, o.w2);
+        if (cmp != 0) return cmp;
+        return Integer.compareUnsigned(w3, o.w3);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof ObjectId)) return false;
+        ObjectId id = (ObjectId) o;
+        return w1 == id.w1 && w2 == id.w2 && w3 == id.w3;
+    }
+
+    // the id is already a uniformly distributed hash, so its leading bits are enough
+    @Override
+    public int hashCode() {
+        return (int) (w1 >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+
+    private static long readLong(byte[] raw, int off) {
+        return readBits(raw, off, 8);
+    }
+
+    private static long readBits(byte[] raw, int off, int len) {
+        long v = 0;
+        for (int i = 0; i < len; i++) {
+            v = (v << 8) | (raw[off + i] & 0xff);
+        }
+        return v;
+    }
+
+    private static void writeBits(byte[] raw, int off, long v, int len) {
+        for (int i = len - 1; i >= 0; i--) {
+            raw[off + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    private static long parseHex(String hex, int off, int len) {
+        long v = 0;
+        for (int i = off; i < off + len; i++) {
+            int d = Character.digit(hex.charAt(i), 16);
+            if (d < 0) {
+                throw new IllegalArgumentException("invalid hex in object id: " + hex);
+            }
+            v = (v << 4) | d;
+        }
+        return v;
+    }
+
+    private static void formatHex(char[] out, int off, long v, int len) {
+        for (int i = off + len - 1; i >= off; i--) {
+            out[i] = HEX_DIGITS[(int) (v & 0xf)];
+            v >>>= 4;
+        }
+    }
+}
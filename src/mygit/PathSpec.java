@@ -0,0 +1,106 @@
+package mygit;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static mygit.Utils.*;
+
+// A set of glob patterns (pathspecs on the command line, or rules from .mygitignore) matched against file names.
+class PathSpec {
+    // matches every file; used for "." and when no pathspec is given
+    static final PathSpec ALL = new PathSpec(true, new HashSet<>(), new ArrayList<>());
+
+    private final boolean matchAll;
+    // arguments that name an existing file, matched exactly in addition to as globs
+    private final Set<String> literals;
+    private final List<PathMatcher> matchers;
+
+    private PathSpec(boolean matchAll, Set<String> literals, List<PathMatcher> matchers) {
+        this.matchAll = matchAll;
+        this.literals = literals;
+        this.matchers = matchers;
+    }
+
+    // Pathspecs from the command line. An argument that names an existing file in DIR also matches that
+    // file literally, so a file such as a[1].txt can still be named; any other malformed glob ends the command.
+    static PathSpec fromArguments(File dir, String... args) {
+        Set<String> literals = new HashSet<>();
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals(".")) {
+                return ALL;
+            }
+            boolean exists = join(dir, arg).isFile();
+            if (exists) {
+                literals.add(arg);
+            }
+            PathMatcher matcher = compile(arg);
+            if (matcher != null) {
+                matchers.add(matcher);
+            } else if (!exists) {
+                System.out.println("Invalid pathspec: " + arg);
+                System.exit(0);
+            }
+        }
+        return new PathSpec(false, literals, matchers);
+    }
+
+    // null if PATTERN is not a valid glob
+    private static PathMatcher compile(String pattern) {
+        try {
+            return FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    // Reads ignore rules, one glob per line; blank lines, lines starting with # and malformed globs are skipped.
+    // A trailing "/" is dropped so ignored directories are rejected by name, before they are ever stat'ed.
+    static PathSpec ignoreRules(File ignoreFile) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        if (ignoreFile.isFile()) {
+            for (String line : readContentsAsString(ignoreFile).split("\\R")) {
+                String rule = line.trim();
+                if (rule.isEmpty() || rule.startsWith("#")) {
+                    continue;
+                }
+                if (rule.startsWith("/")) {
+                    rule = rule.substring(1);
+                }
+                if (rule.endsWith("/")) {
+                    rule = rule.substring(0, rule.length() - 1);
+                }
+                PathMatcher matcher = rule.isEmpty() ? null : compile(rule);
+                if (matcher != null) {
+                    matchers.add(matcher);
+                }
+            }
+        }
+        return new PathSpec(false, new HashSet<>(), matchers);
+    }
+
+    // true if the argument should be expanded against the working directory rather than used as a file name
+    static boolean isPattern(String arg) {
+        return arg.equals(".") || arg.chars().anyMatch(ch -> "*?[{".indexOf(ch) >= 0);
+    }
+
+    boolean matches(String fileName) {
+        if (matchAll || literals.contains(fileName)) {
+            return true;
+        }
+        Path path = Paths.get(fileName);
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,25 +1,33 @@
 package mygit;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import static mygit.Utils.*;
 
 class Repository implements Serializable {
+    // fixed so that adding methods does not make .mygit/repo unreadable
+    private static final long serialVersionUID = 1L;
     private static final File CWD = new File(System.getProperty("user.dir"));
     private static final File mygit_DIR = join(CWD, ".mygit");
     static final File LOG_FILE = join(mygit_DIR, "log");
     static final File OBJECTS_DIR = join(mygit_DIR, "objects");
     static final File STAGING_DIR = join(mygit_DIR, "staging");
+    private static final File IGNORE_FILE = join(CWD, ".mygitignore");
     static final String[] HEXADECIMAL_CHARS = {"0","1","2","3","4","5","6","7","8","9","a","b","c","d","e","f"};
 
-    private String latestCommit;
+    private ObjectId latestCommit;
     private static final File REPO_FILE = join(mygit_DIR, "repo");
     HashSet<String> rmStage = new HashSet<>();
 
@@ -38,7 +46,7 @@ class Repository implements Serializable {
     }
 
     Commit getLatestCommit() {
-        return Commit.getCommitFromString(latestCommit);
+        return Commit.load(latestCommit);
     }
 
     static boolean inRepo() {
@@ -59,61 +67,95 @@ class Repository implements Serializable {
         STAGING_DIR.mkdir();
     }
 
+    // the log file lists one "commit <id>" line per commit; the details live in the commit objects
     private void initializeLog() {
         try (FileWriter writer = new FileWriter(LOG_FILE)) {
-            writer.write(getLatestCommit().toString());
+            writer.write("commit " + latestCommit + "\n");
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    // Stage files
-    void add(String file) {
-        List<String> filesInCWD = plainFilenamesIn(CWD);
-        if (filesInCWD != null) {
-            if (file.equals(".")) {
-                // add all files in CWD
-                for (String fileInCWD : filesInCWD) {
-                    add(fileInCWD);
-                }
-                // stage deletions for missing tracked files
-                Commit c = getLatestCommit();
-                for (String tracked : c.getCommittedFiles()) {
-                    if (!filesInCWD.contains(tracked) && !rmStage.contains(tracked)) {
-                        rmStage.add(tracked);
-                        saveRepo();
-                    }
-                }
-                return;
+    // Stage files; each path is a file name or a glob pathspec ("." stages everything)
+    void add(String... paths) {
+        Commit c = getLatestCommit();
+        for (String path : paths) {
+            if (PathSpec.isPattern(path)) {
+                addMatching(PathSpec.fromArguments(CWD, path), c);
+            } else {
+                addFile(path, c);
             }
+        }
+    }
 
-            if (filesInCWD.contains(file)) {
-                if (rmStage.remove(file)) {
-                    updateLog();
-                    saveRepo();
-                }
-                Commit c = getLatestCommit();
-                if (c.containsExactFile(join(CWD, file))) {
-                    join(STAGING_DIR, file).delete();
-                    return;
-                }
-                try {
-                    Files.copy(join(CWD, file).toPath(),
-                            join(STAGING_DIR, file).toPath(),
-                            StandardCopyOption.REPLACE_EXISTING);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            } else {
-                Commit c = getLatestCommit();
-                if (c.containsFileName(file) && !rmStage.contains(file)) {
-                    rmStage.add(file);
+    private void addMatching(PathSpec spec, Commit c) {
+        List<String> stagedFiles = plainFilenamesIn(STAGING_DIR);
+        Set<String> staged = stagedFiles == null ? new HashSet<>() : new HashSet<>(stagedFiles);
+        List<String> matched = workingFiles(spec, c, staged);
+        if (matched == null) {
+            return;
+        }
+        boolean found = !matched.isEmpty();
+        for (String file : matched) {
+            addFile(file, c);
+        }
+        // stage deletions for missing tracked files
+        for (String tracked : c.getCommittedFiles()) {
+            if (spec.matches(tracked) && !join(CWD, tracked).isFile()) {
+                found = true;
+                if (!rmStage.contains(tracked)) {
+                    rmStage.add(tracked);
                     saveRepo();
-                } else {
-                    System.out.println("File does not exist.");
                 }
             }
         }
+        if (!found && spec != PathSpec.ALL) {
+            System.out.println("File does not exist.");
+        }
+    }
+
+    private void addFile(String file, Commit c) {
+        if (!isTopLevelName(file)) {
+            // only plain files directly in CWD are tracked; anything else could escape into .mygit
+            System.out.println("File does not exist.");
+            return;
+        }
+        File cwdFile = join(CWD, file);
+        if (cwdFile.isFile()) {
+            if (rmStage.remove(file)) {
+                saveRepo();
+            }
+            if (c.containsExactFile(cwdFile)) {
+                join(STAGING_DIR, file).delete();
+                return;
+            }
+            try {
+                Files.copy(cwdFile.toPath(),
+                        join(STAGING_DIR, file).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else if (c.containsFileName(file) && !rmStage.contains(file)) {
+            rmStage.add(file);
+            saveRepo();
+        } else {
+            System.out.println("File does not exist.");
+        }
+    }
+
+    private static boolean isTopLevelName(String file) {
+        return !file.isEmpty() && !file.equals(".") && !file.equals("..")
+                && !file.contains("/") && !file.contains(File.separator)
+                && CWD.equals(join(CWD, file).getParentFile());
+    }
+
+    // Files in CWD matching SPEC. Ignored names that are neither tracked nor staged are
+    // rejected by name alone, so they are never stat'ed or hashed.
+    private List<String> workingFiles(PathSpec spec, Commit c, Set<String> staged) {
+        PathSpec ignored = PathSpec.ignoreRules(IGNORE_FILE);
+        return plainFilenamesIn(CWD, (dir, name) -> spec.matches(name)
+                && (c.containsFileName(name) || staged.contains(name) || !ignored.matches(name)));
     }
 
     void commit(String msg) {
@@ -133,9 +175,8 @@ class Repository implements Serializable {
     }
 
     private void updateLog() {
-        String updatedLog = getLatestCommit().toString() + "\n" + readContentsAsString(LOG_FILE);
-        try (FileWriter writer = new FileWriter(LOG_FILE, false)) {
-            writer.write(updatedLog);
+        try (FileWriter writer = new FileWriter(LOG_FILE, true)) {
+            writer.write("commit " + latestCommit + "\n");
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -157,8 +198,8 @@ class Repository implements Serializable {
         }
     }
 
-    void log() {
-        getLatestCommit().log();
+    void log(int limit, long since, long until, boolean oneline) {
+        getLatestCommit().log(limit, since, until, oneline);
     }
 
     static void find(String msg) {
@@ -174,48 +215,91 @@ class Repository implements Serializable {
         }
     }
 
-    // Show repository status
-    void status() {
-        statusStagedFiles();
-        statusNotStaged();
-        statusUntracked();
-        System.out.println();
+    // Verify the object store and optionally delete objects unreachable from HEAD; exits 1 if problems were found
+    void fsck(boolean prune) {
+        if (!new Fsck(latestCommit).run(prune)) {
+            System.exit(1);
+        }
     }
 
-    private void statusStagedFiles() {
-        System.out.println("\n=== Staged Files ===");
-        List<String> stagedFiles = plainFilenamesIn(STAGING_DIR);
-        if (stagedFiles != null) {
-            stagedFiles.forEach(System.out::println);
+    // Stream the files of a commit as a tar or zip archive to OUTPUT, or to stdout if OUTPUT is null.
+    // A file is written under a temporary name and renamed on success, so a failure never leaves a truncated archive.
+    // Errors go to stderr with exit status 1, so they never end up inside an archive redirected from stdout.
+    static void archive(String commitId, String format, String output) {
+        if (!Archive.isFormat(format)) {
+            System.err.println("Unknown archive format.");
+            System.exit(1);
+        }
+        Commit c = Commit.findCommit(commitId);
+        if (c == null) {
+            System.err.println("No commit with that id exists.");
+            System.exit(1);
+        }
+        File target = output == null ? null : new File(output).getAbsoluteFile();
+        File temp = null;
+        try {
+            if (target != null) {
+                temp = File.createTempFile(".mygit-archive", ".tmp", target.getParentFile());
+            }
+            try (OutputStream out = temp == null
+                    ? new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), BUFFER_SIZE)
+                    : new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE)) {
+                Archive.write(c, format, out);
+            }
+            if (temp != null) {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            if (temp != null) {
+                temp.delete();
+            }
+            System.err.println(e.getMessage());
+            System.exit(1);
         }
     }
 
-    private void statusNotStaged() {
-        System.out.println("\n=== Modifications Not Staged For Commit ===");
+    // Show repository status, optionally limited to files matching the given pathspecs
+    void status(String... paths) {
+        PathSpec spec = paths.length == 0 ? PathSpec.ALL : PathSpec.fromArguments(CWD, paths);
         Commit c = getLatestCommit();
-        List<String> filesInCWD = plainFilenamesIn(CWD);
-
-        if (filesInCWD != null) {
-            filesInCWD.forEach(fileString -> {
-                File cwdFile = join(CWD, fileString);
-                File stagingFile = join(STAGING_DIR, fileString);
-                if ((c.containsFileName(fileString) && !c.containsExactFile(cwdFile) && !stagingFile.exists()) ||
-                        (stagingFile.exists() && !Commit.getFileID(cwdFile).equals(Commit.getFileID(stagingFile)))) {
-                    System.out.println(fileString + " (modified)");
-                }
-            });
+        List<String> stagedFiles = plainFilenamesIn(STAGING_DIR, (dir, name) -> spec.matches(name));
+        if (stagedFiles == null) {
+            stagedFiles = new ArrayList<>();
         }
-
-        List<String> filesInStaging = plainFilenamesIn(STAGING_DIR);
-        if (filesInStaging != null) {
-            filesInStaging.forEach(fileString -> {
-                if (!join(CWD, fileString).exists()) {
-                    System.out.println(fileString + " (deleted)");
-                }
-            });
+        Set<String> staged = new HashSet<>(stagedFiles);
+        List<String> filesInCWD = workingFiles(spec, c, staged);
+        if (filesInCWD == null) {
+            filesInCWD = new ArrayList<>();
         }
+        statusStagedFiles(stagedFiles);
+        statusNotStaged(spec, c, stagedFiles, filesInCWD);
+        statusUntracked(c, staged, filesInCWD);
+        System.out.println();
+    }
 
-        c.getCommittedFiles().forEach(fileString -> {
+    private void statusStagedFiles(List<String> stagedFiles) {
+        System.out.println("\n=== Staged Files ===");
+        stagedFiles.forEach(System.out::println);
+    }
+
+    private void statusNotStaged(PathSpec spec, Commit c, List<String> stagedFiles, List<String> filesInCWD) {
+        System.out.println("\n=== Modifications Not Staged For Commit ===");
+        filesInCWD.forEach(fileString -> {
+            File cwdFile = join(CWD, fileString);
+            File stagingFile = join(STAGING_DIR, fileString);
+            if ((c.containsFileName(fileString) && !c.containsExactFile(cwdFile) && !stagingFile.exists()) ||
+                    (stagingFile.exists() && !Commit.getFileID(cwdFile).equals(Commit.getFileID(stagingFile)))) {
+                System.out.println(fileString + " (modified)");
+            }
+        });
+
+        stagedFiles.forEach(fileString -> {
+            if (!join(CWD, fileString).exists()) {
+                System.out.println(fileString + " (deleted)");
+            }
+        });
+
+        c.getCommittedFiles().stream().filter(spec::matches).sorted().forEach(fileString -> {
             if (!rmStage.contains(fileString) &&
                     !join(CWD, fileString).exists() &&
                     !join(STAGING_DIR, fileString).exists()) {
@@ -224,26 +308,13 @@ class Repository implements Serializable {
         });
     }
 
-    private void statusUntracked() {
+    private void statusUntracked(Commit c, Set<String> staged, List<String> filesInCWD) {
         System.out.println("\n=== Untracked Files ===");
-        getUntrackedFiles().forEach(System.out::println);
-    }
-
-    private List<String> getUntrackedFiles() {
-        List<String> returnList = new ArrayList<>();
-        Commit c = getLatestCommit();
-        List<String> filesInCWD = plainFilenamesIn(CWD);
-        List<String> stagedFiles = plainFilenamesIn(STAGING_DIR);
-
-        if (filesInCWD != null) {
-            filesInCWD.forEach(file -> {
-                if (!(c.containsFileName(file) ||
-                        (stagedFiles != null && stagedFiles.contains(file)))) {
-                    returnList.add(file);
-                }
-            });
-        }
-        return returnList;
+        filesInCWD.forEach(file -> {
+            if (!(c.containsFileName(file) || staged.contains(file))) {
+                System.out.println(file);
+            }
+        });
     }
 
     // Show differences between two commits
@@ -262,19 +333,17 @@ class Repository implements Serializable {
             } else if (in1 && !in2) {
                 System.out.println("- " + file);
             } else if (in1 && in2) {
-                String f1 = c1.getFullFileName(file);
-                String f2 = c2.getFullFileName(file);
-                if (!f1.equals(f2)) {
+                ObjectId id1 = c1.getBlobID(file);
+                ObjectId id2 = c2.getBlobID(file);
+                if (!id1.equals(id2)) {
                     System.out.println("modified: " + file);
-                    printLineDiff(f1, f2);
+                    printLineDiff(getBlobFile(id1, file), getBlobFile(id2, file));
                 }
             }
         });
     }
 
-    private void printLineDiff(String fileId1, String fileId2) {
-        File file1 = getCommittedFile(fileId1);
-        File file2 = getCommittedFile(fileId2);
+    private void printLineDiff(File file1, File file2) {
         List<String> lines1 = List.of(readContentsAsString(file1).split("\\R"));
         List<String> lines2 = List.of(readContentsAsString(file2).split("\\R"));
 
@@ -291,10 +360,14 @@ class Repository implements Serializable {
         }
     }
 
-    private File getCommittedFile(String fullFileName) {
-        String dirName = fullFileName.substring(0, 2);
-        String fileName = fullFileName.substring(2);
-        return join(OBJECTS_DIR, dirName, fileName);
+    // objects/xx/<remaining 38 hex chars>, where commits are stored
+    static File getObjectFile(ObjectId id) {
+        return join(OBJECTS_DIR, id.dirName(), id.fileName());
+    }
+
+    // objects/xx/<remaining 38 hex chars><file name>, where committed file contents are stored
+    static File getBlobFile(ObjectId id, String fileName) {
+        return join(OBJECTS_DIR, id.dirName(), id.fileName() + fileName);
     }
 
     private void saveRepo() {
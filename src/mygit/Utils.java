@@ -6,6 +6,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -15,15 +16,14 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 class Utils {
 
-    static final int UID_LENGTH = 40;
+    static final int BUFFER_SIZE = 64 * 1024;
 
     // Returns the SHA-1 hash of the concatenation of VALS, which may be any mixture of byte arrays and Strings.
-    static String sha1(Object... vals) {
+    static ObjectId sha1(Object... vals) {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
             for (Object val : vals) {
@@ -35,11 +35,24 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+            return ObjectId.fromRaw(md.digest());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    // Returns the SHA-1 hash of FILE's contents, streamed through a fixed-size buffer.
+    static ObjectId sha1OfFile(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
             }
-            return result.toString();
+            return ObjectId.fromRaw(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -130,6 +143,17 @@ class Utils {
         }
     }
 
+    // like plainFilenamesIn(dir), but names rejected by NAMEFILTER are skipped without being stat'ed
+    static List<String> plainFilenamesIn(File dir, FilenameFilter nameFilter) {
+        String[] files = dir.list((d, name) -> nameFilter.accept(d, name) && PLAIN_FILES.accept(d, name));
+        if (files == null) {
+            return null;
+        } else {
+            Arrays.sort(files);
+            return Arrays.asList(files);
+        }
+    }
+
     static List<String> plainFilenamesIn(String dir) {
         return plainFilenamesIn(new File(dir));
     }